@@ -0,0 +1,14 @@
+package org.hillclimbing;
+
+/**
+ * Stream of hill-climbing decisions: each change of thread count along with throughput
+ * (completions per second) measured since the previous change.
+ * Invoked on the sampling thread, so implementations should be fast and must not block.
+ */
+public interface AdjustmentListener {
+
+  AdjustmentListener NONE = (newThreadCount, throughput, transition) -> {
+  };
+
+  void onAdjustment(int newThreadCount, double throughput, StateTransition transition);
+}
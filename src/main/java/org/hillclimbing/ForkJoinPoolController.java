@@ -0,0 +1,156 @@
+package org.hillclimbing;
+
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Attaches hill-climbing to an existing {@link ForkJoinPool}.
+ * Parallelism of the pool is fixed, so the controller limits the number of tasks submitted through
+ * {@link #execute(Runnable)} that run concurrently instead. When the limit is above pool parallelism, tasks
+ * run as {@link ForkJoinPool.ManagedBlocker}, so the pool compensates each of them with a spare thread.
+ */
+public final class ForkJoinPoolController extends PoolController implements Executor {
+
+  private final ForkJoinPool pool;
+  private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger running = new AtomicInteger();
+  private final LongAdder completions = new LongAdder();
+  private volatile int limit;
+
+  private ForkJoinPoolController(ForkJoinPool pool, HillClimbingOptions options, Random random) {
+    super(options, random);
+    this.pool = pool;
+    this.limit = Math.max(1, Math.max(options.minThreadsCount, Math.min(options.maxThreadsCount, pool.getParallelism())));
+  }
+
+  public static ForkJoinPoolController attach(ForkJoinPool pool, HillClimbingOptions options) {
+    ForkJoinPoolController controller = new ForkJoinPoolController(pool, options, new Random());
+    controller.start();
+    return controller;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    if (pool.isShutdown()) {
+      throw new RejectedExecutionException("Pool is shut down");
+    }
+
+    pending.offer(task);
+    RejectedExecutionException rejected = dispatch();
+    if (rejected != null) {
+      throw rejected;
+    }
+  }
+
+  /**
+   * @return the last rejection by the pool, rejected tasks are dropped and cancelled if they are futures
+   */
+  private RejectedExecutionException dispatch() {
+    RejectedExecutionException rejected = null;
+    for (;;) {
+      int current = running.get();
+      if (current >= limit || pending.isEmpty()) {
+        return rejected;
+      }
+
+      if (!running.compareAndSet(current, current + 1)) {
+        continue;
+      }
+
+      Runnable task = pending.poll();
+      if (task == null) {
+        running.decrementAndGet();
+        continue;
+      }
+
+      try {
+        pool.execute(new CountedTask(task));
+      }
+      catch (RejectedExecutionException e) {
+        running.decrementAndGet();
+        if (task instanceof Future) {
+          ((Future<?>) task).cancel(false);
+        }
+        rejected = e;
+      }
+    }
+  }
+
+  @Override
+  long completedTaskCount() {
+    return completions.sum();
+  }
+
+  @Override
+  int threadCount() {
+    return limit;
+  }
+
+  @Override
+  void applyThreadCount(int newThreadCount) {
+    // With zero nothing is dispatched, so no completions would ever move it up again
+    limit = Math.max(1, newThreadCount);
+    dispatch();
+  }
+
+  @Override
+  boolean isPoolTerminated() {
+    return pool.isTerminated();
+  }
+
+  private final class CountedTask implements Runnable, ForkJoinPool.ManagedBlocker {
+
+    private final Runnable task;
+    private boolean done;
+
+    CountedTask(Runnable task) {
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      if (limit > pool.getParallelism()) {
+        try {
+          ForkJoinPool.managedBlock(this);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        catch (RejectedExecutionException e) {
+          // Pool is out of spare threads, the task runs uncompensated below rather than holding its slot forever
+        }
+      }
+      // No-op if the task was already run as managed blocker
+      block();
+    }
+
+    @Override
+    public boolean block() {
+      if (!done) {
+        done = true;
+        try {
+          task.run();
+        }
+        finally {
+          completions.increment();
+          running.decrementAndGet();
+          // Rejections are not rethrown here, they belong to submitters rather than to this task
+          dispatch();
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public boolean isReleasable() {
+      return done;
+    }
+  }
+}
@@ -10,17 +10,23 @@ import java.util.Random;
 import static org.hillclimbing.Complex.real;
 
 // TODO: rename, extract opts, fix behaviour, provide cpu-utilization, provide adequate api, revisit overflows
+// Not thread-safe: PoolController confines each instance to the sampling thread and publishes results itself
 final class HillClimbing {
 
   private static final double PI = 3.141592653589793;
 
-  private final HillClimbingOptions options;
-  private final double[] samples;
-  private final double[] threadCounts;
   private final Random randomIntervalGenerator;
+  private final AdjustmentListener listener;
+
+  private HillClimbingOptions options;
+  private double[] samples;
+  private double[] threadCounts;
 
   private double currentControlSetting;
+  private int threadWaveMagnitude;
   private long totalSamples;
+  // Number of the oldest sample still in history, older ones were dropped by reconfigure
+  private long historyStart;
   private int lastThreadCount;
   // seconds in double
   private double elapsedSinceLastChange;
@@ -33,7 +39,12 @@ final class HillClimbing {
 
 
   HillClimbing(HillClimbingOptions options, Random random) {
+    this(options, random, AdjustmentListener.NONE);
+  }
+
+  HillClimbing(HillClimbingOptions options, Random random, AdjustmentListener listener) {
     this.options = options;
+    this.listener = listener;
     currentControlSetting = 0;
     totalSamples = 0;
     lastThreadCount = 0;
@@ -59,13 +70,42 @@ final class HillClimbing {
   void changeThreadsCount(int newThreadCount, StateTransition transition) {
     lastThreadCount = newThreadCount;
     currentSampleInterval = options.sampleIntervalLow + randomIntervalGenerator.nextInt(options.sampleIntervalHigh + 1);
-    // TODO: report here
-    // double throughput = (elapsedSinceLastChange > 0) ? (completionsSinceLastChange / elapsedSinceLastChange) : 0;
-    //  m_options.FireEtwThreadPoolWorkerThreadAdjustmentAdjustment(newThreadCount, throughput, transition);
+    double throughput = (elapsedSinceLastChange > 0) ? (completionsSinceLastChange / elapsedSinceLastChange) : 0;
+    listener.onAdjustment(newThreadCount, throughput, transition);
     elapsedSinceLastChange = 0;
     completionsSinceLastChange = 0;
   }
 
+  /**
+   * Swaps options keeping learned state: the most recent samples are moved to history buffers of the new size,
+   * control setting and thread count are clamped to the new bounds. Reported as {@link StateTransition#RECONFIGURING}.
+   *
+   * @return thread count within the new bounds
+   */
+  int reconfigure(HillClimbingOptions newOptions, int currentThreadCount) {
+    int keptSamples = (int) Math.min(totalSamples - historyStart, Math.min(options.samplesToMeasure, newOptions.samplesToMeasure));
+    double[] newSamples = new double[newOptions.samplesToMeasure];
+    double[] newThreadCounts = new double[newOptions.samplesToMeasure];
+    // Sample numbers are kept, so the square wave continues in phase with the kept history
+    for (int i = 0; i < keptSamples; i++) {
+      long sample = totalSamples - keptSamples + i;
+      int sampleIndex = (int) (sample % options.samplesToMeasure);
+      int newSampleIndex = (int) (sample % newOptions.samplesToMeasure);
+      newSamples[newSampleIndex] = samples[sampleIndex];
+      newThreadCounts[newSampleIndex] = threadCounts[sampleIndex];
+    }
+
+    samples = newSamples;
+    threadCounts = newThreadCounts;
+    historyStart = totalSamples - keptSamples;
+    options = newOptions;
+
+    currentControlSetting = Math.min(options.maxThreadsCount, Math.max(options.minThreadsCount, currentControlSetting));
+    int newThreadCount = Math.min(options.maxThreadsCount, Math.max(options.minThreadsCount, currentThreadCount));
+    changeThreadsCount(newThreadCount, StateTransition.RECONFIGURING);
+    return newThreadCount;
+  }
+
   int update(int currentThreadCount, double sampleDuration, int numCompletions) {
 
     // If someone changed thread count without telling us, update our records accordingly.
@@ -101,7 +141,10 @@ final class HillClimbing {
     * we missed in the previous samples, and so will be 33% positive.  So every three samples we'll have
     * two "low" samples and one "high" sample. This will appear as periodic variation right in the frequency
     * range we're targeting, which will not be filtered by the frequency-domain translation.
-    * TODO hillclimbing update in my implementation will be processed in separate thread so it's worth to revisit this math later
+    *
+    * Note that PoolController calls update from its sampling thread rather than from the thread which has just
+    * completed a work item, so strictly the error is +/- threadCount / numCompletions. The original bound is kept: it only decides
+    * whether to accumulate more data and is off by a single thread.
     */
     if (totalSamples > 0 && ((currentThreadCount - 1.0) / numCompletions) >= options.maxSampleError) {
       // Not accurate enough yet, accumulate the data so far and do nothing
@@ -132,7 +175,9 @@ final class HillClimbing {
     // How many samples will we use?  It must be at least the three wave periods we're looking for, and it must also be a whole
     // multiple of the primary wave's period; otherwise the frequency we're looking for will fall between two  frequency bands
     // in the Fourier analysis, and we won't be able to measure it accurately.
-    int sampleCount = (int) (Math.min(totalSamples - 1, options.samplesToMeasure) / options.wavePeriod) * options.wavePeriod;
+    // The very first sample is skipped, unless reconfigure has already dropped it from history.
+    int sampleCount = (int) (Math.min(totalSamples - Math.max(1, historyStart), options.samplesToMeasure) / options.wavePeriod)
+      * options.wavePeriod;
 
     if (sampleCount > options.wavePeriod) {
       // Average the throughput and thread count samples, so we can scale the wave magnitudes later.
@@ -238,6 +283,8 @@ final class HillClimbing {
     currentControlSetting = Math.min(options.maxThreadsCount - newThreadWaveMagnitude, currentControlSetting);
     currentControlSetting = Math.max(options.minThreadsCount, currentControlSetting);
 
+    threadWaveMagnitude = newThreadWaveMagnitude;
+
     // Calculate the new thread count (control setting + square wave)
     int newThreadCount = (int) (currentControlSetting + newThreadWaveMagnitude * ((totalSamples / (options.wavePeriod / 2)) % 2));
 
@@ -268,6 +315,21 @@ final class HillClimbing {
     return nextSampleInterval;
   }
 
+  /**
+   * @return throughput (completions per second) of the latest accepted sample, zero if there were none
+   */
+  double getLastThroughput() {
+    return totalSamples == 0 ? 0 : samples[(int) ((totalSamples - 1) % options.samplesToMeasure)];
+  }
+
+  /**
+   * @return whether control setting is pushed against the upper bound, so the wave peaks at max threads count.
+   * Unlike the thread count itself, it doesn't flip with the square wave
+   */
+  boolean isAtUpperBound() {
+    return currentControlSetting + threadWaveMagnitude >= options.maxThreadsCount;
+  }
+
   private int currentCpuUtilization() {
     return 0;
   }
@@ -296,11 +358,4 @@ final class HillClimbing {
 
     return new Complex(q1 - q2 * cosine, q2 * sine).divideBy((double) sampleCount);
   }
-
-  enum StateTransition {
-    WARMUP,
-    INITIALIZING,
-    CLIMBING_MOVE,
-    STABILIZING,
-  }
 }
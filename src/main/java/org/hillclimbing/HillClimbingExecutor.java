@@ -0,0 +1,908 @@
+package org.hillclimbing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executor which thread count is driven by {@link HillClimbing}.
+ * <p>
+ * Queue can be bounded by capacity and, once controller pushes against {@link HillClimbingOptions#maxThreadsCount},
+ * by expected queue wait: tasks queued in the lane divided by its completions per second since the last sample
+ * that had any.
+ * Admission is lock-free: queue slot is reserved with CAS and task is offered to non-blocking queue.
+ * Tasks which are not admitted are handled according to {@link OverloadPolicy}.
+ * <p>
+ * Workers regulate themselves against the target published by {@link PoolController}: on each dequeue
+ * a worker above target parks as surplus and retires if it isn't needed again within keep-alive time.
+ * <p>
+ * Delayed and periodic tasks are kept in the shared {@link TimerWheel}, so scheduling and cancellation are O(1),
+ * and are handed to workers when due. Due tasks skip the queue wait check, they have waited already, but not capacity:
+ * when the queue is full, a periodic task misses the run and a one-shot task is cancelled, unless the policy is
+ * {@link OverloadPolicy#DISCARD_OLDEST} and there is a queued task to drop instead.
+ * Tasks which are not due yet are cancelled on shutdown.
+ * <p>
+ * Tasks can be submitted to several {@link Lane lanes}, see {@link #lane(int)}. Workers dequeue lanes
+ * in weighted round-robin order, lane may run only as many tasks as the threads not reserved by other lanes,
+ * and the controller measures throughput as completions weighted per lane. Plain submissions
+ * and due scheduled tasks go to the first lane.
+ */
+public final class HillClimbingExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+  private static final int RUNNING = 0;
+  private static final int SHUTDOWN = 1;
+  private static final int TERMINATED = 2;
+  // Length of the expanded lane schedule, weights are reduced by their greatest common divisor first
+  private static final int MAX_TOTAL_LANE_WEIGHT = 1 << 16;
+
+  public static final class Builder {
+    private HillClimbingOptions options = HillClimbingOptions.DEFAULT_OPTIONS;
+    private int queueCapacity = Integer.MAX_VALUE;
+    private long maxQueueWaitMillis = Long.MAX_VALUE;
+    private OverloadPolicy overloadPolicy = OverloadPolicy.ABORT;
+    private long keepAliveMillis = 60_000;
+    private ThreadFactory threadFactory = Executors.defaultThreadFactory();
+    private AdjustmentListener adjustmentListener = AdjustmentListener.NONE;
+    private Lane[] lanes = {Lane.DEFAULT};
+
+    private Builder() {
+    }
+
+    public Builder setOptions(HillClimbingOptions options) {
+      this.options = options;
+      return this;
+    }
+
+    public Builder setQueueCapacity(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+      return this;
+    }
+
+    public Builder setMaxQueueWaitMillis(long maxQueueWaitMillis) {
+      this.maxQueueWaitMillis = maxQueueWaitMillis;
+      return this;
+    }
+
+    public Builder setOverloadPolicy(OverloadPolicy overloadPolicy) {
+      this.overloadPolicy = overloadPolicy;
+      return this;
+    }
+
+    public Builder setKeepAliveMillis(long keepAliveMillis) {
+      this.keepAliveMillis = keepAliveMillis;
+      return this;
+    }
+
+    public Builder setThreadFactory(ThreadFactory threadFactory) {
+      this.threadFactory = threadFactory;
+      return this;
+    }
+
+    public Builder setAdjustmentListener(AdjustmentListener adjustmentListener) {
+      this.adjustmentListener = adjustmentListener;
+      return this;
+    }
+
+    /**
+     * Weights of the lanes reduced by their greatest common divisor should not sum above {@code 2^16}.
+     */
+    public Builder setLanes(Lane... lanes) {
+      if (lanes.length == 0) {
+        throw new IllegalArgumentException("At least one lane is required");
+      }
+      long totalWeight = 0;
+      for (int weight : reducedWeights(lanes)) {
+        totalWeight += weight;
+      }
+      if (totalWeight > MAX_TOTAL_LANE_WEIGHT) {
+        throw new IllegalArgumentException(
+          "Total reduced lane weight should not exceed " + MAX_TOTAL_LANE_WEIGHT + ": " + totalWeight);
+      }
+      this.lanes = lanes.clone();
+      return this;
+    }
+
+    public HillClimbingExecutor build() {
+      return new HillClimbingExecutor(options, queueCapacity, maxQueueWaitMillis, overloadPolicy, keepAliveMillis,
+        threadFactory, adjustmentListener, lanes, new Random());
+    }
+  }
+
+
+  private final int queueCapacity;
+  private final long maxQueueWaitNanos;
+  private final OverloadPolicy overloadPolicy;
+  private final long keepAliveNanos;
+  private final ThreadFactory threadFactory;
+  private final Controller controller;
+  private final LaneQueue[] lanes;
+  private final Executor[] laneExecutors;
+  // Lane indices in smooth weighted round-robin order
+  private final int[] laneSchedule;
+  private final AtomicInteger laneCursor = new AtomicInteger();
+
+  // Reserved queue slots of all lanes, may be ahead of the actual queue size
+  private final AtomicInteger queueSize = new AtomicInteger();
+  private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+  private final Queue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+  private final Queue<Worker> surplusWorkers = new ConcurrentLinkedQueue<>();
+  // All live workers, including surplus ones
+  private final AtomicInteger workerCount = new AtomicInteger();
+  // Workers allowed to dequeue tasks
+  private final AtomicInteger activeCount = new AtomicInteger();
+  private final Set<ScheduledTask<?>> delayedTasks = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger state = new AtomicInteger(RUNNING);
+  private final CountDownLatch termination = new CountDownLatch(1);
+
+
+  private HillClimbingExecutor(HillClimbingOptions options, int queueCapacity, long maxQueueWaitMillis,
+                               OverloadPolicy overloadPolicy, long keepAliveMillis, ThreadFactory threadFactory,
+                               AdjustmentListener adjustmentListener, Lane[] lanes, Random random) {
+    this.queueCapacity = queueCapacity;
+    this.maxQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueWaitMillis);
+    this.overloadPolicy = overloadPolicy;
+    this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveMillis);
+    this.threadFactory = threadFactory;
+    int reservedThreadsCount = 0;
+    for (Lane lane : lanes) {
+      reservedThreadsCount += lane.reservedThreadsCount;
+    }
+    this.lanes = new LaneQueue[lanes.length];
+    this.laneExecutors = new Executor[lanes.length];
+    for (int i = 0; i < lanes.length; i++) {
+      LaneQueue lane = new LaneQueue(lanes[i], reservedThreadsCount - lanes[i].reservedThreadsCount);
+      this.lanes[i] = lane;
+      this.laneExecutors[i] = task -> execute(lane, task);
+    }
+    this.laneSchedule = laneSchedule(lanes);
+    this.controller = new Controller(options, random);
+    controller.setAdjustmentListener(adjustmentListener);
+    controller.publish(options.minThreadsCount, options.sampleIntervalLow);
+    adjustWorkers();
+    controller.start();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Interleaves lanes so each one appears proportionally to its weight and heavy lanes are not dequeued in bursts.
+   */
+  private static int[] laneSchedule(Lane[] lanes) {
+    int[] weights = reducedWeights(lanes);
+    // Bounded by Builder#setLanes
+    int totalWeight = 0;
+    for (int weight : weights) {
+      totalWeight += weight;
+    }
+
+    int[] schedule = new int[totalWeight];
+    int[] current = new int[lanes.length];
+    for (int position = 0; position < totalWeight; position++) {
+      int selected = 0;
+      for (int i = 0; i < lanes.length; i++) {
+        current[i] += weights[i];
+        if (current[i] > current[selected]) {
+          selected = i;
+        }
+      }
+      current[selected] -= totalWeight;
+      schedule[position] = selected;
+    }
+    return schedule;
+  }
+
+  /**
+   * @return lane weights divided by their greatest common divisor, which leaves the schedule proportions as is
+   */
+  private static int[] reducedWeights(Lane[] lanes) {
+    int divisor = 0;
+    for (Lane lane : lanes) {
+      divisor = gcd(divisor, lane.weight);
+    }
+
+    int[] weights = new int[lanes.length];
+    for (int i = 0; i < lanes.length; i++) {
+      weights[i] = lanes[i].weight / divisor;
+    }
+    return weights;
+  }
+
+  private static int gcd(int a, int b) {
+    while (b != 0) {
+      int remainder = a % b;
+      a = b;
+      b = remainder;
+    }
+    return a;
+  }
+
+  /**
+   * @return executor which submits tasks to the lane with given index, in order of {@link Builder#setLanes(Lane...)}
+   */
+  public Executor lane(int index) {
+    return laneExecutors[index];
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    execute(lanes[0], task);
+  }
+
+  private void execute(LaneQueue lane, Runnable task) {
+    if (task == null) {
+      throw new NullPointerException();
+    }
+
+    if (state.get() != RUNNING) {
+      throw new RejectedExecutionException("Executor is shut down");
+    }
+
+    if (tryReserveSlot(lane, true)) {
+      enqueue(lane, task);
+    }
+    else {
+      overload(lane, task);
+    }
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return schedule(new ScheduledTask<Void>(command, null, triggerTime(delay, unit), 0));
+  }
+
+  @Override
+  public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+    return schedule(new ScheduledTask<>(callable, triggerTime(delay, unit)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("Period should be positive: " + period);
+    }
+    return schedule(new ScheduledTask<Void>(command, null, triggerTime(initialDelay, unit), unit.toNanos(period)));
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    if (delay <= 0) {
+      throw new IllegalArgumentException("Delay should be positive: " + delay);
+    }
+    return schedule(new ScheduledTask<Void>(command, null, triggerTime(initialDelay, unit), -unit.toNanos(delay)));
+  }
+
+  private static long triggerTime(long delay, TimeUnit unit) {
+    // Far enough to be never reached, close enough not to overflow
+    return System.nanoTime() + Math.min(unit.toNanos(Math.max(delay, 0)), Long.MAX_VALUE >> 2);
+  }
+
+  private <V> ScheduledTask<V> schedule(ScheduledTask<V> task) {
+    if (state.get() != RUNNING) {
+      throw new RejectedExecutionException("Executor is shut down");
+    }
+
+    delayedTasks.add(task);
+    task.timeout = TimerWheel.SHARED.schedule(() -> handOver(task), task.time - System.nanoTime());
+    // Concurrent shutdown may have missed the task
+    if (state.get() != RUNNING) {
+      task.cancel(false);
+      throw new RejectedExecutionException("Executor is shut down");
+    }
+    return task;
+  }
+
+  // Called on the timer thread, so never runs the task itself
+  private void handOver(ScheduledTask<?> task) {
+    if (!delayedTasks.remove(task)) {
+      // Cancelled already
+      return;
+    }
+
+    LaneQueue lane = lanes[0];
+    // Timer thread can neither run the task nor throw to anyone, so other policies only shed it
+    if (!tryReserveSlot(lane, false) && (overloadPolicy != OverloadPolicy.DISCARD_OLDEST || !discardOldest(lane))) {
+      if (task.isPeriodic()) {
+        task.reschedule();
+      }
+      else {
+        task.cancel(false);
+      }
+      return;
+    }
+
+    try {
+      enqueue(lane, task);
+    }
+    catch (RejectedExecutionException e) {
+      task.cancel(false);
+    }
+  }
+
+  private boolean tryReserveSlot(LaneQueue lane, boolean checkQueueWait) {
+    for (;;) {
+      int size = queueSize.get();
+      if (size >= queueCapacity || (checkQueueWait && exceedsMaxQueueWait(lane))) {
+        return false;
+      }
+
+      if (queueSize.compareAndSet(size, size + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private boolean exceedsMaxQueueWait(LaneQueue lane) {
+    // Until the controller is saturated, growing queue is a signal for it to add threads
+    if (maxQueueWaitNanos == Long.MAX_VALUE || !controller.isAtUpperBound()) {
+      return false;
+    }
+
+    // Per lane: weighted dequeue drains lanes at different rates, whatever their weight for hill-climbing
+    double throughput = lane.throughput;
+    return throughput > 0 && lane.queued.get() / throughput * 1e9 > maxQueueWaitNanos;
+  }
+
+  private void enqueue(LaneQueue lane, Runnable task) {
+    lane.queued.incrementAndGet();
+    lane.tasks.offer(task);
+    if (state.get() != RUNNING && lane.tasks.remove(task)) {
+      lane.queued.decrementAndGet();
+      queueSize.decrementAndGet();
+      throw new RejectedExecutionException("Executor is shut down");
+    }
+
+    Worker idle = idleWorkers.poll();
+    if (idle != null) {
+      LockSupport.unpark(idle.thread);
+    }
+  }
+
+  private void overload(LaneQueue lane, Runnable task) {
+    switch (overloadPolicy) {
+      case ABORT:
+        throw new RejectedExecutionException("Executor is overloaded, queue size is " + queueSize.get());
+      case DISCARD:
+        discard(task);
+        break;
+      case DISCARD_OLDEST:
+        if (!discardOldest(lane) && !tryReserveSlot(lane, false)) {
+          // Lane has nothing to discard and other lanes fill the queue, so submitted task is the one to drop
+          discard(task);
+          break;
+        }
+        enqueue(lane, task);
+        break;
+      case CALLER_RUNS:
+        try {
+          task.run();
+        }
+        finally {
+          lane.completions.increment();
+        }
+        break;
+    }
+  }
+
+  /**
+   * @return false if the lane is empty, otherwise slot of its oldest task is left for the caller to take
+   */
+  private boolean discardOldest(LaneQueue lane) {
+    Runnable oldest = lane.tasks.poll();
+    if (oldest == null) {
+      return false;
+    }
+
+    lane.queued.decrementAndGet();
+    discard(oldest);
+    return true;
+  }
+
+  private static void discard(Runnable task) {
+    if (task instanceof Future) {
+      ((Future<?>) task).cancel(false);
+    }
+  }
+
+  private Runnable poll(LaneQueue lane) {
+    Runnable task = lane.tasks.poll();
+    if (task != null) {
+      lane.queued.decrementAndGet();
+      queueSize.decrementAndGet();
+    }
+    return task;
+  }
+
+  /**
+   * Picks the lane to run a task from, starting with the next one in weighted round-robin order.
+   *
+   * @return lane with a task and running slot acquired, or null if there is nothing this worker can run
+   */
+  private LaneQueue acquireLane() {
+    int first = lanes.length == 1
+      ? 0
+      : laneSchedule[(laneCursor.getAndIncrement() & Integer.MAX_VALUE) % laneSchedule.length];
+    for (int i = 0; i < lanes.length; i++) {
+      LaneQueue lane = lanes[(first + i) % lanes.length];
+      if (!lane.tasks.isEmpty() && lane.tryAcquire()) {
+        return lane;
+      }
+    }
+    return null;
+  }
+
+  private boolean hasRunnableTasks() {
+    for (LaneQueue lane : lanes) {
+      if (lane.hasRunnableTasks()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isQueueEmpty() {
+    for (LaneQueue lane : lanes) {
+      if (!lane.tasks.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int targetThreadCount() {
+    return Math.max(1, controller.getTargetThreadCount());
+  }
+
+  private void runWorker(Worker worker) {
+    for (;;) {
+      int active = activeCount.get();
+      if (active > targetThreadCount()) {
+        if (activeCount.compareAndSet(active, active - 1) && !awaitActivation(worker)) {
+          return;
+        }
+        continue;
+      }
+
+      LaneQueue lane = acquireLane();
+      if (lane != null) {
+        Runnable task = poll(lane);
+        if (task != null) {
+          runTask(task);
+          lane.completions.increment();
+        }
+        lane.running.decrementAndGet();
+        continue;
+      }
+
+      if (state.get() != RUNNING) {
+        activeCount.decrementAndGet();
+        workerCount.decrementAndGet();
+        return;
+      }
+
+      // Interrupt left by a task would make park return at once, concurrent shutdownNow() fails the re-check below
+      // or interrupts after it
+      Thread.interrupted();
+      idleWorkers.offer(worker);
+      // Re-check after publishing ourselves as idle, otherwise concurrent submission may miss us
+      if (hasRunnableTasks() || state.get() != RUNNING || activeCount.get() > targetThreadCount()) {
+        idleWorkers.remove(worker);
+        continue;
+      }
+
+      LockSupport.park(this);
+      idleWorkers.remove(worker);
+    }
+  }
+
+  /**
+   * Parks surplus worker until target grows back, so already started thread is reused instead of a new one.
+   *
+   * @return false if worker has retired after keep-alive time or shutdown
+   */
+  private boolean awaitActivation(Worker worker) {
+    long deadline = System.nanoTime() + keepAliveNanos;
+    for (;;) {
+      int active = activeCount.get();
+      if (state.get() == RUNNING && active < targetThreadCount()) {
+        if (activeCount.compareAndSet(active, active + 1)) {
+          return true;
+        }
+        continue;
+      }
+
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0 || state.get() != RUNNING) {
+        workerCount.decrementAndGet();
+        return false;
+      }
+
+      // Same as for idle workers: leftover interrupt would turn the park into a spin until keep-alive ends
+      Thread.interrupted();
+      surplusWorkers.offer(worker);
+      if (state.get() != RUNNING || activeCount.get() < targetThreadCount()) {
+        surplusWorkers.remove(worker);
+        continue;
+      }
+
+      LockSupport.parkNanos(this, remaining);
+      surplusWorkers.remove(worker);
+    }
+  }
+
+  private void runTask(Runnable task) {
+    if (state.get() == RUNNING) {
+      // Clear interrupt possibly left by previous task
+      Thread.interrupted();
+    }
+
+    try {
+      task.run();
+    }
+    catch (Throwable e) {
+      Thread thread = Thread.currentThread();
+      thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+  }
+
+  private void adjustWorkers() {
+    int target = targetThreadCount();
+    // Parked surplus workers are reused first
+    for (int missing = target - activeCount.get(); missing > 0; missing--) {
+      Worker surplus = surplusWorkers.poll();
+      if (surplus == null) {
+        break;
+      }
+      LockSupport.unpark(surplus.thread);
+    }
+
+    for (;;) {
+      int count = workerCount.get();
+      if (count >= target || state.get() != RUNNING) {
+        break;
+      }
+
+      if (workerCount.compareAndSet(count, count + 1)) {
+        activeCount.incrementAndGet();
+        startWorker();
+      }
+    }
+
+    // Wake up excess idle workers so they can step aside
+    for (int excess = activeCount.get() - target; excess > 0; excess--) {
+      Worker idle = idleWorkers.poll();
+      if (idle == null) {
+        break;
+      }
+      LockSupport.unpark(idle.thread);
+    }
+  }
+
+  private void startWorker() {
+    Worker worker = new Worker();
+    if (worker.thread == null) {
+      activeCount.decrementAndGet();
+      workerCount.decrementAndGet();
+      return;
+    }
+
+    workers.add(worker);
+    worker.thread.start();
+  }
+
+  private void tryTerminate() {
+    if (state.get() == SHUTDOWN && workerCount.get() == 0 && isQueueEmpty()
+      && state.compareAndSet(SHUTDOWN, TERMINATED)) {
+      controller.close();
+      termination.countDown();
+    }
+  }
+
+  private void cancelDelayedTasks() {
+    for (ScheduledTask<?> task : delayedTasks) {
+      task.cancel(false);
+    }
+  }
+
+  // Returned tasks are not cancelled, like queued ones they are left for the caller to run or drop
+  private void drainDelayedTasks(List<Runnable> tasks) {
+    for (ScheduledTask<?> task : delayedTasks) {
+      // Removal races with hand-over, so each task ends up either in a lane or here
+      if (delayedTasks.remove(task)) {
+        TimerWheel.Timeout scheduled = task.timeout;
+        if (scheduled != null) {
+          scheduled.cancel();
+        }
+        tasks.add(task);
+      }
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    state.compareAndSet(RUNNING, SHUTDOWN);
+    cancelDelayedTasks();
+    for (Worker worker : workers) {
+      LockSupport.unpark(worker.thread);
+    }
+    tryTerminate();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    state.compareAndSet(RUNNING, SHUTDOWN);
+    List<Runnable> tasks = new ArrayList<>();
+    drainDelayedTasks(tasks);
+    for (LaneQueue lane : lanes) {
+      Runnable task;
+      while ((task = poll(lane)) != null) {
+        tasks.add(task);
+      }
+    }
+
+    for (Worker worker : workers) {
+      worker.thread.interrupt();
+    }
+    tryTerminate();
+    return tasks;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return state.get() != RUNNING;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return state.get() == TERMINATED;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return termination.await(timeout, unit);
+  }
+
+  public HillClimbingOptions getOptions() {
+    return controller.getOptions();
+  }
+
+  /**
+   * Replaces options without restarting the executor, see {@link PoolController#reconfigure(HillClimbingOptions)}.
+   */
+  public void reconfigure(HillClimbingOptions options) {
+    controller.reconfigure(options);
+  }
+
+  public int getPoolSize() {
+    return workerCount.get();
+  }
+
+  public int getActiveCount() {
+    return activeCount.get();
+  }
+
+  public int getQueueSize() {
+    return queueSize.get();
+  }
+
+  public int getLaneCount() {
+    return lanes.length;
+  }
+
+  public long getCompletedTaskCount(int lane) {
+    return lanes[lane].completions.sum();
+  }
+
+  /**
+   * @return completions per second measured by the latest accepted sample, zero if there were none
+   */
+  public double getThroughput() {
+    return controller.getThroughput();
+  }
+
+  /**
+   * @return unweighted completions per second of the lane since the last sample which had any, used for admission
+   */
+  public double getThroughput(int lane) {
+    return lanes[lane].throughput;
+  }
+
+  private final class LaneQueue {
+
+    final Lane lane;
+    final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    final AtomicInteger running = new AtomicInteger();
+    final LongAdder completions = new LongAdder();
+    // Tasks in the queue, unlike its size() it's O(1)
+    final AtomicInteger queued = new AtomicInteger();
+    // Completions per second since the last sample which had any, see Controller#sampled
+    volatile double throughput;
+    // Threads reserved by all the other lanes
+    private final int othersReservedThreadsCount;
+    // Owned by the sampling thread
+    private long lastSampleNanos = System.nanoTime();
+    private long lastCompletions;
+
+    LaneQueue(Lane lane, int othersReservedThreadsCount) {
+      this.lane = lane;
+      this.othersReservedThreadsCount = othersReservedThreadsCount;
+    }
+
+    private int runningLimit() {
+      return Math.max(1, targetThreadCount() - othersReservedThreadsCount);
+    }
+
+    boolean tryAcquire() {
+      for (;;) {
+        int current = running.get();
+        if (current >= runningLimit()) {
+          return false;
+        }
+
+        if (running.compareAndSet(current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    boolean hasRunnableTasks() {
+      return !tasks.isEmpty() && running.get() < runningLimit();
+    }
+  }
+
+  private final class Worker implements Runnable {
+
+    final Thread thread;
+
+    Worker() {
+      thread = threadFactory.newThread(this);
+    }
+
+    @Override
+    public void run() {
+      try {
+        runWorker(this);
+      }
+      finally {
+        workers.remove(this);
+        tryTerminate();
+      }
+    }
+  }
+
+  private final class ScheduledTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+
+    // System.nanoTime() of the next run
+    private volatile long time;
+    // Positive for fixed rate, negative for fixed delay and zero for one-shot tasks
+    private final long period;
+    private volatile TimerWheel.Timeout timeout;
+
+    ScheduledTask(Runnable runnable, V result, long time, long period) {
+      super(runnable, result);
+      this.time = time;
+      this.period = period;
+    }
+
+    ScheduledTask(Callable<V> callable, long time) {
+      super(callable);
+      this.time = time;
+      this.period = 0;
+    }
+
+    @Override
+    public boolean isPeriodic() {
+      return period != 0;
+    }
+
+    @Override
+    public void run() {
+      if (!isPeriodic()) {
+        super.run();
+      }
+      else if (runAndReset()) {
+        reschedule();
+      }
+    }
+
+    void reschedule() {
+      time = period > 0 ? time + period : System.nanoTime() - period;
+      try {
+        schedule(this);
+      }
+      catch (RejectedExecutionException e) {
+        // Shut down in the meantime, periodic task is not run anymore
+        cancel(false);
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled) {
+        delayedTasks.remove(this);
+        TimerWheel.Timeout scheduled = timeout;
+        if (scheduled != null) {
+          scheduled.cancel();
+        }
+      }
+      return cancelled;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(time - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+  }
+
+  private final class Controller extends PoolController {
+
+    Controller(HillClimbingOptions options, Random random) {
+      super(options, random);
+    }
+
+    @Override
+    void sampled(long nowNanos) {
+      for (LaneQueue lane : lanes) {
+        long completions = lane.completions.sum();
+        // Unlike hill-climbing, empty samples are merged into the next one: stuck workers mean slow drain, not none
+        if (completions > lane.lastCompletions) {
+          lane.throughput = (completions - lane.lastCompletions) * 1e9 / (nowNanos - lane.lastSampleNanos);
+          lane.lastCompletions = completions;
+          lane.lastSampleNanos = nowNanos;
+        }
+      }
+    }
+
+    @Override
+    long completedTaskCount() {
+      double weightedCompletions = 0;
+      for (LaneQueue lane : lanes) {
+        weightedCompletions += lane.lane.throughputWeight * lane.completions.sum();
+      }
+      return Math.round(weightedCompletions);
+    }
+
+    @Override
+    int threadCount() {
+      return getTargetThreadCount();
+    }
+
+    @Override
+    void applyThreadCount(int newThreadCount) {
+      adjustWorkers();
+    }
+
+    @Override
+    boolean isPoolTerminated() {
+      return isTerminated();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package org.hillclimbing;
+
+/**
+ * Submission lane of {@link HillClimbingExecutor}.
+ * <p>
+ * Lanes are dequeued in weighted round-robin order by {@link #weight}. Completions of the lane are multiplied
+ * by {@link #throughputWeight} before they reach hill-climbing, so zero weight excludes the lane from throughput
+ * the controller optimizes. {@link #reservedThreadsCount} threads are held back from the other lanes,
+ * as long as the current thread count allows it.
+ */
+public final class Lane {
+
+  public static final Lane DEFAULT = builder().build();
+
+  public static final class Builder {
+    private int weight = 1;
+    private double throughputWeight = 1;
+    private int reservedThreadsCount = 0;
+
+    private Builder() {
+    }
+
+    public Builder setWeight(int weight) {
+      this.weight = weight;
+      return this;
+    }
+
+    public Builder setThroughputWeight(double throughputWeight) {
+      this.throughputWeight = throughputWeight;
+      return this;
+    }
+
+    public Builder setReservedThreadsCount(int reservedThreadsCount) {
+      this.reservedThreadsCount = reservedThreadsCount;
+      return this;
+    }
+
+    public Lane build() {
+      return new Lane(weight, throughputWeight, reservedThreadsCount);
+    }
+  }
+
+
+  public final int weight;
+  public final double throughputWeight;
+  public final int reservedThreadsCount;
+
+
+  public Lane(int weight, double throughputWeight, int reservedThreadsCount) {
+    if (weight < 1) {
+      throw new IllegalArgumentException("Weight should be positive: " + weight);
+    }
+    // Negated, so NaN is rejected as well
+    if (!(throughputWeight >= 0)) {
+      throw new IllegalArgumentException("Throughput weight should be non-negative: " + throughputWeight);
+    }
+    if (reservedThreadsCount < 0) {
+      throw new IllegalArgumentException("Reserved threads count should be non-negative: " + reservedThreadsCount);
+    }
+
+    this.weight = weight;
+    this.throughputWeight = throughputWeight;
+    this.reservedThreadsCount = reservedThreadsCount;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+}
@@ -0,0 +1,27 @@
+package org.hillclimbing;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * What {@link HillClimbingExecutor} does with a task which is not admitted to the queue:
+ * either queue is full or expected queue wait exceeds configured deadline.
+ * Discarded tasks which are {@link java.util.concurrent.Future futures} are cancelled.
+ */
+public enum OverloadPolicy {
+  /**
+   * Throw {@link RejectedExecutionException}
+   */
+  ABORT,
+  /**
+   * Silently drop submitted task
+   */
+  DISCARD,
+  /**
+   * Drop the oldest queued task and enqueue submitted one instead
+   */
+  DISCARD_OLDEST,
+  /**
+   * Run submitted task in the submitting thread
+   */
+  CALLER_RUNS,
+}
@@ -0,0 +1,205 @@
+package org.hillclimbing;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drives thread count of some pool with {@link HillClimbing}.
+ * Samples are triggered by the shared {@link TimerWheel} with intervals suggested by
+ * {@link HillClimbing#getNextSampleInterval()}, and taken on a single sampler thread shared by all controllers.
+ * It is the only thread touching hill-climbing state, and slow pools never delay timeouts of the wheel.
+ * Results of each sample are published as a single volatile snapshot, so pool threads may read them without locks.
+ * Options can be replaced on the fly with {@link #reconfigure(HillClimbingOptions)}, keeping learned state.
+ * Hill-climbing adapts to them on the sampling thread, but new bounds apply to readers right away.
+ */
+public abstract class PoolController implements AutoCloseable {
+
+  private static final Executor SAMPLER = Executors.newSingleThreadExecutor(task -> {
+    Thread thread = new Thread(task, "hill-climbing-sampler");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final HillClimbing hillClimbing;
+  private final AtomicReference<HillClimbingOptions> pendingOptions = new AtomicReference<>();
+
+  private volatile HillClimbingOptions options;
+  private volatile AdjustmentListener listener = AdjustmentListener.NONE;
+  private long lastSampleNanos;
+  private long lastCompletedTaskCount;
+  // Target thread count in high and next sample interval in low 32 bits
+  private volatile long control;
+  private volatile double throughput;
+  private volatile boolean atUpperBound;
+  private volatile TimerWheel.Timeout nextSample;
+  private volatile boolean closed;
+
+  PoolController(HillClimbingOptions options, Random random) {
+    this.options = options;
+    this.hillClimbing = new HillClimbing(options, random, this::notifyListener);
+  }
+
+  /**
+   * @return monotonically growing count of tasks completed by the pool
+   */
+  abstract long completedTaskCount();
+
+  abstract int threadCount();
+
+  abstract void applyThreadCount(int newThreadCount);
+
+  abstract boolean isPoolTerminated();
+
+  /**
+   * Called on the sampling thread with the time of each sample, before its results are published.
+   */
+  void sampled(long nowNanos) {
+  }
+
+  final void start() {
+    int threadCount = threadCount();
+    lastSampleNanos = System.nanoTime();
+    lastCompletedTaskCount = completedTaskCount();
+    hillClimbing.forceChange(threadCount, StateTransition.INITIALIZING);
+    publish(threadCount, options.sampleIntervalLow);
+    scheduleNextSample(options.sampleIntervalLow);
+  }
+
+  final void sample() {
+    if (closed || isPoolTerminated()) {
+      return;
+    }
+
+    try {
+      // Decision must not be made with bounds of the options being replaced
+      applyPendingOptions();
+      long now = System.nanoTime();
+      long completedTaskCount = completedTaskCount();
+      double sampleDuration = (now - lastSampleNanos) / 1e9;
+      int numCompletions = (int) Math.min(Integer.MAX_VALUE, completedTaskCount - lastCompletedTaskCount);
+      lastSampleNanos = now;
+      lastCompletedTaskCount = completedTaskCount;
+
+      int currentThreadCount = threadCount();
+      int newThreadCount = hillClimbing.update(currentThreadCount, sampleDuration, numCompletions);
+      sampled(now);
+      throughput = hillClimbing.getLastThroughput();
+      // Published before applying, so pool threads see new target as soon as they are signalled
+      publish(newThreadCount, nextSampleInterval());
+      if (newThreadCount != currentThreadCount) {
+        applyThreadCount(newThreadCount);
+      }
+    }
+    finally {
+      scheduleNextSample(nextSampleInterval());
+    }
+  }
+
+  /**
+   * Replaces options of the live controller. New options are returned by {@link #getOptions()} and bound
+   * {@link #getTargetThreadCount()} as soon as this method returns. Learned state is adapted asynchronously
+   * on the sampling thread: history is resized, control setting is clamped and thread count is applied to the pool.
+   */
+  public final void reconfigure(HillClimbingOptions newOptions) {
+    // Swapped together, so the last of concurrent calls wins for both readers and hill-climbing
+    synchronized (pendingOptions) {
+      options = newOptions;
+      pendingOptions.set(newOptions);
+    }
+    SAMPLER.execute(this::applyPendingOptions);
+  }
+
+  private void applyPendingOptions() {
+    HillClimbingOptions newOptions = pendingOptions.getAndSet(null);
+    if (newOptions == null || closed || isPoolTerminated()) {
+      return;
+    }
+
+    int currentThreadCount = threadCount();
+    int newThreadCount = hillClimbing.reconfigure(newOptions, currentThreadCount);
+    publish(newThreadCount, getSampleInterval());
+    // Applied even if unchanged: readers have seen new bounds already, but the pool may not have caught up
+    applyThreadCount(newThreadCount);
+  }
+
+  // Failing listener must not abort the sample half-way, with the decision neither published nor applied
+  private void notifyListener(int newThreadCount, double throughput, StateTransition transition) {
+    try {
+      listener.onAdjustment(newThreadCount, throughput, transition);
+    }
+    catch (Throwable e) {
+      Thread thread = Thread.currentThread();
+      thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+  }
+
+  private int nextSampleInterval() {
+    int interval = hillClimbing.getNextSampleInterval();
+    return interval > 0 ? interval : options.sampleIntervalLow;
+  }
+
+  final void publish(int targetThreadCount, int sampleInterval) {
+    atUpperBound = hillClimbing.isAtUpperBound();
+    control = ((long) targetThreadCount << 32) | (sampleInterval & 0xFFFFFFFFL);
+  }
+
+  private void scheduleNextSample(long delayMillis) {
+    if (!closed) {
+      // Wheel only triggers the sample, applying it may start threads or resize the pool
+      nextSample = TimerWheel.SHARED.schedule(() -> SAMPLER.execute(this::sample), TimeUnit.MILLISECONDS.toNanos(delayMillis));
+    }
+  }
+
+  /**
+   * @return the latest decision of hill-climbing, bounded by current options even before it adapts to them
+   */
+  public final int getTargetThreadCount() {
+    HillClimbingOptions options = this.options;
+    return Math.min(options.maxThreadsCount, Math.max(options.minThreadsCount, (int) (control >>> 32)));
+  }
+
+  /**
+   * @return milliseconds until the next sample
+   */
+  public final int getSampleInterval() {
+    return (int) control;
+  }
+
+  /**
+   * @return completions per second measured by the latest accepted sample, zero if there were none
+   */
+  public final double getThroughput() {
+    return throughput;
+  }
+
+  /**
+   * @return whether hill-climbing has pushed thread count against max threads count and can't add more.
+   * Stable across the exploration wave, unlike comparing {@link #getTargetThreadCount()} with the bound
+   */
+  public final boolean isAtUpperBound() {
+    return atUpperBound;
+  }
+
+  public final HillClimbingOptions getOptions() {
+    return options;
+  }
+
+  public final void setAdjustmentListener(AdjustmentListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Stops sampling; thread count of the pool is left as is.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    TimerWheel.Timeout sample = nextSample;
+    if (sample != null) {
+      sample.cancel();
+    }
+  }
+}
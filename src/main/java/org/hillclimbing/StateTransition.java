@@ -0,0 +1,12 @@
+package org.hillclimbing;
+
+/**
+ * Reason of the thread count change made by hill-climbing.
+ */
+public enum StateTransition {
+  WARMUP,
+  INITIALIZING,
+  CLIMBING_MOVE,
+  STABILIZING,
+  RECONFIGURING,
+}
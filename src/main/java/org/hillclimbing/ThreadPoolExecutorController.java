@@ -0,0 +1,55 @@
+package org.hillclimbing;
+
+import java.util.Random;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Attaches hill-climbing to an existing {@link ThreadPoolExecutor}.
+ * Completions are taken from {@link ThreadPoolExecutor#getCompletedTaskCount()}, so neither tasks nor executor
+ * have to be wrapped, and new thread count is applied to both core and maximum pool sizes.
+ */
+public final class ThreadPoolExecutorController extends PoolController {
+
+  private final ThreadPoolExecutor executor;
+
+  private ThreadPoolExecutorController(ThreadPoolExecutor executor, HillClimbingOptions options, Random random) {
+    super(options, random);
+    this.executor = executor;
+  }
+
+  public static ThreadPoolExecutorController attach(ThreadPoolExecutor executor, HillClimbingOptions options) {
+    ThreadPoolExecutorController controller = new ThreadPoolExecutorController(executor, options, new Random());
+    controller.start();
+    return controller;
+  }
+
+  @Override
+  long completedTaskCount() {
+    return executor.getCompletedTaskCount();
+  }
+
+  @Override
+  int threadCount() {
+    return executor.getCorePoolSize();
+  }
+
+  @Override
+  void applyThreadCount(int newThreadCount) {
+    // Zero allowed by options is not a valid maximum pool size
+    newThreadCount = Math.max(1, newThreadCount);
+    // Core pool size can't exceed maximum one, so order of updates depends on direction
+    if (newThreadCount > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(newThreadCount);
+      executor.setCorePoolSize(newThreadCount);
+    }
+    else {
+      executor.setCorePoolSize(newThreadCount);
+      executor.setMaximumPoolSize(newThreadCount);
+    }
+  }
+
+  @Override
+  boolean isPoolTerminated() {
+    return executor.isTerminated();
+  }
+}
@@ -0,0 +1,295 @@
+package org.hillclimbing;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical hashed timer wheel driven by a single daemon thread.
+ * <p>
+ * Level {@code l} has {@link #SLOTS} slots of {@code SLOTS^l} ticks each; timeout is placed on the lowest level
+ * where it fits and is cascaded to lower levels as time passes, so both scheduling and cancellation are O(1).
+ * Other threads never touch the wheel itself: new and cancelled timeouts are passed to the tick thread
+ * through lock-free queues. Expired tasks run on the tick thread, so they should only hand work over.
+ * Ticks without expirations or cascades are skipped: the thread sleeps until the next one that has work,
+ * and is woken up earlier only if a timeout due before that is scheduled.
+ * <p>
+ * {@link #SHARED} instance triggers controller samples and hands over scheduled tasks of all executors in the process.
+ */
+final class TimerWheel {
+
+  static final TimerWheel SHARED = new TimerWheel("hill-climbing-timer", TimeUnit.MILLISECONDS.toNanos(1));
+
+  private static final int WHEEL_BITS = 6;
+  private static final int SLOTS = 1 << WHEEL_BITS;
+  private static final int MASK = SLOTS - 1;
+  // 2^36 ticks, timeouts above that are parked in the top level and re-inserted on cascade
+  private static final int LEVELS = 6;
+
+  private final long tickNanos;
+  private final long startNanos;
+  private final Bucket[][] wheel = new Bucket[LEVELS][SLOTS];
+  private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+  private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+  private final Thread thread;
+
+  // Owned by the tick thread
+  private long currentTick;
+  private int size;
+  // Tick the thread sleeps until, MAX_VALUE when idle and MIN_VALUE when awake, as then it drains new timeouts anyway
+  private volatile long wakeupTick = Long.MIN_VALUE;
+
+  TimerWheel(String name, long tickNanos) {
+    this.tickNanos = tickNanos;
+    this.startNanos = System.nanoTime();
+    for (Bucket[] level : wheel) {
+      for (int slot = 0; slot < SLOTS; slot++) {
+        level[slot] = new Bucket();
+      }
+    }
+
+    thread = new Thread(this::run, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Schedules task to be run on the tick thread not earlier than after given delay.
+   */
+  Timeout schedule(Runnable task, long delayNanos) {
+    long deadlineNanos = System.nanoTime() + Math.max(0, delayNanos) - startNanos;
+    // Round up, so the task never fires early
+    Timeout timeout = new Timeout(task, (deadlineNanos + tickNanos - 1) / tickNanos);
+    scheduled.offer(timeout);
+    if (timeout.deadline < wakeupTick) {
+      LockSupport.unpark(thread);
+    }
+    return timeout;
+  }
+
+  private void run() {
+    for (;;) {
+      drainScheduled();
+      drainCancelled();
+      long nowTick = (System.nanoTime() - startNanos) / tickNanos;
+      long nextTick = nextEventTick();
+      // Ticks before the next event are empty, but the wheel never gets ahead of time
+      if (nextTick > currentTick) {
+        currentTick = Math.min(nextTick, nowTick + 1);
+      }
+
+      if (currentTick <= nowTick) {
+        tick();
+      }
+      else {
+        sleepUntil(nextTick);
+      }
+    }
+  }
+
+  private void sleepUntil(long tick) {
+    wakeupTick = tick;
+    // Rechecked after publishing wakeup tick, so a concurrent schedule either is seen here or unparks the thread
+    if (scheduled.isEmpty()) {
+      if (tick == Long.MAX_VALUE) {
+        LockSupport.park(this);
+      }
+      else {
+        LockSupport.parkNanos(this, tick * tickNanos - (System.nanoTime() - startNanos));
+      }
+    }
+    wakeupTick = Long.MIN_VALUE;
+  }
+
+  /**
+   * @return the earliest tick from the current one that expires or cascades timeouts, MAX_VALUE if there are none
+   */
+  private long nextEventTick() {
+    long next = Long.MAX_VALUE;
+    if (size == 0) {
+      return next;
+    }
+
+    for (int level = 0; level < LEVELS; level++) {
+      int shift = WHEEL_BITS * level;
+      // Slot of the level processed first from now on, counted in slots of the level since the start
+      long first = (currentTick + (1L << shift) - 1) >>> shift;
+      for (int slot = 0; slot < SLOTS; slot++) {
+        if (!wheel[level][slot].isEmpty()) {
+          next = Math.min(next, (first + ((slot - first) & MASK)) << shift);
+        }
+      }
+    }
+    return next;
+  }
+
+  private void drainScheduled() {
+    Timeout timeout;
+    while ((timeout = scheduled.poll()) != null) {
+      if (timeout.state.get() == Timeout.PENDING) {
+        size++;
+        insert(timeout);
+      }
+    }
+  }
+
+  private void drainCancelled() {
+    Timeout timeout;
+    while ((timeout = cancelled.poll()) != null) {
+      // Null bucket means it was cancelled before reaching the wheel
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+        size--;
+      }
+    }
+  }
+
+  private void insert(Timeout timeout) {
+    long deadline = timeout.deadline;
+    if (deadline <= currentTick) {
+      // Due already, goes to the slot being processed right now
+      wheel[0][(int) (currentTick & MASK)].add(timeout);
+      return;
+    }
+
+    for (int level = 0; level < LEVELS; level++) {
+      int shift = WHEEL_BITS * (level + 1);
+      // Fits the level if it expires before the level makes a full turn
+      if ((deadline >>> shift) == (currentTick >>> shift)) {
+        wheel[level][(int) ((deadline >>> (WHEEL_BITS * level)) & MASK)].add(timeout);
+        return;
+      }
+    }
+
+    // Beyond the horizon: the last slot of the top level to be cascaded, re-inserted from there
+    int top = LEVELS - 1;
+    wheel[top][(int) (((currentTick >>> (WHEEL_BITS * top)) + MASK) & MASK)].add(timeout);
+  }
+
+  private void tick() {
+    // Higher levels first: they may cascade into current slots of the lower ones
+    for (int level = LEVELS - 1; level > 0; level--) {
+      int shift = WHEEL_BITS * level;
+      if ((currentTick & ((1L << shift) - 1)) == 0) {
+        Timeout timeout = wheel[level][(int) ((currentTick >>> shift) & MASK)].clear();
+        while (timeout != null) {
+          Timeout next = timeout.next;
+          timeout.next = null;
+          insert(timeout);
+          timeout = next;
+        }
+      }
+    }
+
+    Timeout timeout = wheel[0][(int) (currentTick & MASK)].clear();
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      timeout.next = null;
+      size--;
+      timeout.expire();
+      timeout = next;
+    }
+    currentTick++;
+  }
+
+  final class Timeout {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final Runnable task;
+    private final long deadline;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    // Owned by the tick thread
+    private Bucket bucket;
+    private Timeout prev;
+    private Timeout next;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * @return false if the task has already expired or was cancelled before
+     */
+    boolean cancel() {
+      if (state.compareAndSet(PENDING, CANCELLED)) {
+        cancelled.offer(this);
+        return true;
+      }
+      return false;
+    }
+
+    private void expire() {
+      bucket = null;
+      if (state.compareAndSet(PENDING, EXPIRED)) {
+        try {
+          task.run();
+        }
+        catch (Throwable e) {
+          thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+      }
+    }
+  }
+
+  private static final class Bucket {
+
+    private Timeout head;
+    private Timeout tail;
+
+    boolean isEmpty() {
+      return head == null;
+    }
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      timeout.prev = tail;
+      timeout.next = null;
+      if (tail == null) {
+        head = timeout;
+      }
+      else {
+        tail.next = timeout;
+      }
+      tail = timeout;
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.prev == null) {
+        head = timeout.next;
+      }
+      else {
+        timeout.prev.next = timeout.next;
+      }
+
+      if (timeout.next == null) {
+        tail = timeout.prev;
+      }
+      else {
+        timeout.next.prev = timeout.prev;
+      }
+      timeout.bucket = null;
+      timeout.prev = null;
+      timeout.next = null;
+    }
+
+    /**
+     * @return former head of the list, timeouts are still linked through {@link Timeout#next}
+     */
+    Timeout clear() {
+      Timeout first = head;
+      for (Timeout timeout = first; timeout != null; timeout = timeout.next) {
+        timeout.bucket = null;
+        timeout.prev = null;
+      }
+      head = null;
+      tail = null;
+      return first;
+    }
+  }
+}
@@ -0,0 +1,470 @@
+package org.hillclimbing;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hillclimbing.TestOptions.options;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HillClimbingExecutorTest {
+
+  @Test(timeout = 10_000)
+  public void testExecutesAllTasks() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder().setOptions(options(2, 8)).build();
+    AtomicInteger executed = new AtomicInteger();
+    for (int i = 0; i < 10_000; i++) {
+      executor.execute(executed::incrementAndGet);
+    }
+
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(10_000, executed.get());
+    assertEquals(0, executor.getPoolSize());
+  }
+
+  @Test(timeout = 10_000)
+  public void testIdleWorkerDoesNotSpinAfterInterruptingTask() throws InterruptedException {
+    List<Thread> threads = new CopyOnWriteArrayList<>();
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(1, 1))
+      .setThreadFactory(task -> {
+        Thread thread = new Thread(task);
+        threads.add(thread);
+        return thread;
+      })
+      .build();
+    CountDownLatch done = new CountDownLatch(1);
+    executor.execute(() -> {
+      Thread.currentThread().interrupt();
+      done.countDown();
+    });
+    done.await();
+
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    Thread.sleep(50);
+    long cpuNanos = threadBean.getThreadCpuTime(threads.get(0).getId());
+    Thread.sleep(200);
+    // Parked worker uses no CPU, spinning one would burn all of these 200 milliseconds
+    assertTrue(threadBean.getThreadCpuTime(threads.get(0).getId()) - cpuNanos < TimeUnit.MILLISECONDS.toNanos(50));
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 10_000)
+  public void testSurplusWorkerDoesNotSpinAfterInterruptingTask() throws InterruptedException {
+    List<Thread> threads = new CopyOnWriteArrayList<>();
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(2, 2))
+      .setThreadFactory(task -> {
+        Thread thread = new Thread(task);
+        threads.add(thread);
+        return thread;
+      })
+      .build();
+    CountDownLatch started = new CountDownLatch(2);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(2);
+    for (int i = 0; i < 2; i++) {
+      executor.execute(() -> {
+        started.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException ignored) {
+        }
+        Thread.currentThread().interrupt();
+        done.countDown();
+      });
+    }
+    // Target shrinks while both tasks run, so one of the workers goes surplus straight after its task
+    started.await();
+    executor.reconfigure(options(1, 1));
+    release.countDown();
+    done.await();
+
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    Thread.sleep(50);
+    long cpuNanos = 0;
+    for (Thread thread : threads) {
+      cpuNanos -= threadBean.getThreadCpuTime(thread.getId());
+    }
+    Thread.sleep(200);
+    for (Thread thread : threads) {
+      cpuNanos += threadBean.getThreadCpuTime(thread.getId());
+    }
+    assertTrue(cpuNanos < TimeUnit.MILLISECONDS.toNanos(50));
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 10_000)
+  public void testRejectsWhenQueueIsFull() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(1, 1))
+      .setQueueCapacity(2)
+      .build();
+    CountDownLatch release = blockWorker(executor);
+    executor.execute(() -> {
+    });
+    executor.execute(() -> {
+    });
+    try {
+      executor.execute(() -> {
+      });
+      fail();
+    }
+    catch (RejectedExecutionException ignored) {
+    }
+    finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void testDiscardsOldestWhenQueueIsFull() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(1, 1))
+      .setQueueCapacity(1)
+      .setOverloadPolicy(OverloadPolicy.DISCARD_OLDEST)
+      .build();
+    CountDownLatch release = blockWorker(executor);
+    Future<?> oldest = executor.submit(() -> {
+    });
+    Future<?> newest = executor.submit(() -> {
+    });
+    release.countDown();
+
+    assertTrue(oldest.isCancelled());
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(newest.isDone() && !newest.isCancelled());
+  }
+
+  @Test(timeout = 10_000)
+  public void testDiscardOldestRespectsCapacityOfOtherLanes() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(1, 1))
+      .setQueueCapacity(1)
+      .setOverloadPolicy(OverloadPolicy.DISCARD_OLDEST)
+      .setLanes(Lane.DEFAULT, Lane.DEFAULT)
+      .build();
+    CountDownLatch release = blockWorker(executor);
+    executor.lane(0).execute(() -> {
+    });
+    // Second lane has nothing to discard, so the queue is full for the submitted task itself
+    FutureTask<?> submitted = new FutureTask<>(() -> null);
+    executor.lane(1).execute(submitted);
+
+    assertTrue(submitted.isCancelled());
+    assertEquals(1, executor.getQueueSize());
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 10_000)
+  public void testCallerRunsCountsCompletion() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(1, 1))
+      .setQueueCapacity(0)
+      .setOverloadPolicy(OverloadPolicy.CALLER_RUNS)
+      .build();
+    Thread caller = Thread.currentThread();
+    AtomicInteger callerRuns = new AtomicInteger();
+    executor.execute(() -> {
+      if (Thread.currentThread() == caller) {
+        callerRuns.incrementAndGet();
+      }
+    });
+
+    assertEquals(1, callerRuns.get());
+    assertEquals(1, executor.getCompletedTaskCount(0));
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 10_000)
+  public void testShedsWhenExpectedWaitExceedsDeadline() throws InterruptedException {
+    checkShedding(options(1, 1));
+  }
+
+  @Test(timeout = 10_000)
+  public void testShedsWhileWaveOscillatesAtUpperBound() throws InterruptedException {
+    // Wave of at least one thread keeps control setting at one, so target flips between one and two threads
+    checkShedding(options(1, 2));
+  }
+
+  @Test(timeout = 10_000)
+  public void testLaneWeightsAreReducedByCommonDivisor() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(1, 1))
+      .setLanes(Lane.builder().setWeight(300_000_000).build(), Lane.builder().setWeight(100_000_000).build())
+      .build();
+    CountDownLatch release = blockWorker(executor);
+    List<Integer> order = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      executor.lane(0).execute(() -> order.add(0));
+      executor.lane(1).execute(() -> order.add(1));
+    }
+
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(6, order.subList(0, 8).stream().filter(lane -> lane == 0).count());
+  }
+
+  @Test
+  public void testInvalidLanesAreRejected() {
+    List<Runnable> invalid = Arrays.asList(
+      () -> HillClimbingExecutor.builder().setLanes(),
+      () -> Lane.builder().setWeight(0).build(),
+      () -> Lane.builder().setThroughputWeight(-1).build(),
+      () -> Lane.builder().setReservedThreadsCount(-1).build(),
+      () -> HillClimbingExecutor.builder().setLanes(
+        Lane.builder().setWeight(1_000_000_000).build(), Lane.builder().setWeight(1_000_000_001).build()));
+    for (Runnable build : invalid) {
+      try {
+        build.run();
+        fail();
+      }
+      catch (IllegalArgumentException ignored) {
+      }
+    }
+  }
+
+  private static void checkShedding(HillClimbingOptions options) throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options)
+      .setMaxQueueWaitMillis(1)
+      .setOverloadPolicy(OverloadPolicy.DISCARD)
+      .build();
+    // Hundreds of tasks per second are enough to measure, a submission per millisecond gets there quickly
+    while (executor.getThroughput() < 100) {
+      executor.execute(() -> {
+      });
+      Thread.sleep(1);
+    }
+
+    // Queue wait of one millisecond is exceeded long before queue holds a task per completion per second
+    int limit = (int) executor.getThroughput() + 1;
+    CountDownLatch release = blockWorkers(executor, options.maxThreadsCount);
+    for (int i = 0; i < limit; i++) {
+      executor.execute(() -> {
+      });
+    }
+
+    assertTrue(executor.getQueueSize() < limit);
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 10_000)
+  public void testExpectedWaitIsEstimatedPerLane() throws InterruptedException {
+    // Bulk lane doesn't count for hill-climbing, but its wait is estimated all the same
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(1, 1))
+      .setMaxQueueWaitMillis(1)
+      .setOverloadPolicy(OverloadPolicy.DISCARD)
+      .setLanes(Lane.builder().setThroughputWeight(0).build(), Lane.DEFAULT)
+      .build();
+    while (executor.getThroughput(0) < 100 || executor.getThroughput(1) < 100) {
+      executor.lane(0).execute(() -> {
+      });
+      executor.lane(1).execute(() -> {
+      });
+      Thread.sleep(1);
+    }
+
+    int limit = (int) executor.getThroughput(0) + 1;
+    CountDownLatch release = blockWorker(executor);
+    for (int i = 0; i < limit; i++) {
+      executor.lane(0).execute(() -> {
+      });
+    }
+    // Other lane has nothing queued, so it doesn't wait for the backlog of the bulk one
+    FutureTask<?> interactive = new FutureTask<>(() -> null);
+    executor.lane(1).execute(interactive);
+
+    assertTrue(executor.getQueueSize() < limit);
+    assertFalse(interactive.isCancelled());
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertTrue(interactive.isDone());
+  }
+
+  @Test(timeout = 10_000)
+  public void testReconfigureShrinksPool() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(4, 8))
+      .setKeepAliveMillis(10)
+      .build();
+    assertTrue(executor.getPoolSize() >= 4);
+
+    executor.reconfigure(options(1, 1));
+    while (executor.getPoolSize() > 1) {
+      Thread.sleep(1);
+    }
+
+    assertEquals(1, executor.getOptions().maxThreadsCount);
+    assertEquals(1, executor.getActiveCount());
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 10_000)
+  public void testScheduledTasks() throws Exception {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder().setOptions(options(2, 4)).build();
+    long start = System.nanoTime();
+    ScheduledFuture<String> delayed = executor.schedule(() -> "done", 20, TimeUnit.MILLISECONDS);
+    assertEquals("done", delayed.get());
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+
+    CountDownLatch runs = new CountDownLatch(3);
+    ScheduledFuture<?> periodic = executor.scheduleAtFixedRate(runs::countDown, 0, 5, TimeUnit.MILLISECONDS);
+    runs.await();
+    assertTrue(periodic.cancel(false));
+
+    ScheduledFuture<?> distant = executor.schedule(() -> {
+    }, 1, TimeUnit.HOURS);
+    executor.shutdown();
+    assertTrue(distant.isCancelled());
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 10_000)
+  public void testDueTasksRespectQueueCapacity() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(1, 1))
+      .setQueueCapacity(1)
+      .build();
+    CountDownLatch release = blockWorker(executor);
+    List<ScheduledFuture<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      futures.add(executor.schedule(() -> {
+      }, 1, TimeUnit.MILLISECONDS));
+    }
+    // Only one of due tasks fits the queue, the others are shed
+    while (futures.stream().filter(Future::isCancelled).count() < 2) {
+      Thread.sleep(1);
+    }
+
+    assertEquals(1, executor.getQueueSize());
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(1, futures.stream().filter(future -> future.isDone() && !future.isCancelled()).count());
+  }
+
+  @Test(timeout = 10_000)
+  public void testShutdownNowReturnsDelayedTasks() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder().setOptions(options(1, 1)).build();
+    ScheduledFuture<?> distant = executor.schedule(() -> {
+    }, 1, TimeUnit.HOURS);
+
+    List<Runnable> tasks = executor.shutdownNow();
+    assertEquals(1, tasks.size());
+    assertSame(distant, tasks.get(0));
+    assertFalse(distant.isDone());
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 10_000)
+  public void testLaneReservedThreads() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(2, 2))
+      .setLanes(Lane.DEFAULT, Lane.builder().setReservedThreadsCount(1).build())
+      .build();
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger bulkStarted = new AtomicInteger();
+    for (int i = 0; i < 2; i++) {
+      executor.execute(() -> {
+        bulkStarted.incrementAndGet();
+        try {
+          release.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+
+    // Second thread is reserved for the interactive lane, so it isn't taken by the bulk one
+    CountDownLatch interactive = new CountDownLatch(1);
+    executor.lane(1).execute(interactive::countDown);
+    interactive.await();
+    assertEquals(1, bulkStarted.get());
+
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(2, executor.getCompletedTaskCount(0));
+    assertEquals(1, executor.getCompletedTaskCount(1));
+  }
+
+  @Test(timeout = 10_000)
+  public void testLanesAreDequeuedByWeight() throws InterruptedException {
+    HillClimbingExecutor executor = HillClimbingExecutor.builder()
+      .setOptions(options(1, 1))
+      .setLanes(Lane.builder().setWeight(3).build(), Lane.builder().setWeight(1).build())
+      .build();
+    CountDownLatch release = blockWorker(executor);
+    List<Integer> order = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      executor.lane(0).execute(() -> order.add(0));
+      executor.lane(1).execute(() -> order.add(1));
+    }
+
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    // While both lanes have tasks, every four dequeues take three tasks of the first lane
+    assertEquals(6, order.subList(0, 8).stream().filter(lane -> lane == 0).count());
+  }
+
+  private static CountDownLatch blockWorker(HillClimbingExecutor executor) throws InterruptedException {
+    return blockWorkers(executor, 1);
+  }
+
+  private static CountDownLatch blockWorkers(HillClimbingExecutor executor, int count) throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(count);
+    CountDownLatch release = new CountDownLatch(1);
+    for (int i = 0; i < count; i++) {
+      // Empty queue has no wait, so blocking tasks are admitted even when the executor sheds load
+      while (executor.getQueueSize() > 0) {
+        Thread.sleep(1);
+      }
+
+      executor.execute(() -> {
+        started.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+    }
+    started.await();
+    return release;
+  }
+}
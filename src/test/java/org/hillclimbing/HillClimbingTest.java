@@ -0,0 +1,93 @@
+package org.hillclimbing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HillClimbingTest {
+
+  @Test
+  public void testReconfigureKeepsRecentHistory() {
+    HillClimbing hc = new HillClimbing(TestOptions.builder(1, 1).setSamplesToMeasure(8).build(), new Random(239));
+    hc.forceChange(1, StateTransition.INITIALIZING);
+    for (int completions = 1; completions <= 12; completions++) {
+      hc.update(1, 1.0, completions);
+    }
+    assertEquals(12, hc.getLastThroughput(), 1e-8);
+
+    hc.reconfigure(TestOptions.builder(1, 1).setSamplesToMeasure(4).build(), 1);
+    assertEquals(12, hc.getLastThroughput(), 1e-8);
+    hc.update(1, 1.0, 13);
+    assertEquals(13, hc.getLastThroughput(), 1e-8);
+
+    hc.reconfigure(TestOptions.builder(1, 1).setSamplesToMeasure(16).build(), 1);
+    assertEquals(13, hc.getLastThroughput(), 1e-8);
+    hc.update(1, 1.0, 14);
+    assertEquals(14, hc.getLastThroughput(), 1e-8);
+  }
+
+  @Test
+  public void testReconfigureClampsThreadCount() {
+    List<String> decisions = new ArrayList<>();
+    HillClimbing hc = new HillClimbing(TestOptions.builder(1, 10).setSamplesToMeasure(8).build(), new Random(239),
+      (newThreadCount, throughput, transition) -> decisions.add(transition + ":" + newThreadCount));
+    hc.forceChange(8, StateTransition.INITIALIZING);
+
+    assertEquals(4, hc.reconfigure(TestOptions.builder(1, 4).setSamplesToMeasure(8).build(), 8));
+    assertEquals("RECONFIGURING:4", decisions.get(decisions.size() - 1));
+    for (int i = 0; i < 100; i++) {
+      assertTrue(hc.update(4, 1.0, 100) <= 4);
+    }
+  }
+
+  @Test
+  public void testUpperBoundIsStableAcrossWave() {
+    HillClimbing hc = new HillClimbing(TestOptions.builder(2, 8).setSamplesToMeasure(32).build(), new Random(239));
+    hc.forceChange(2, StateTransition.INITIALIZING);
+    int threadCount = 2;
+    int samplesAtBound = 0;
+    List<Integer> threadCountsAtBound = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      // Every thread adds throughput, so climbing ends up at the upper bound
+      threadCount = hc.update(threadCount, 1.0, threadCount * 100);
+      if (hc.isAtUpperBound()) {
+        samplesAtBound++;
+        threadCountsAtBound.add(threadCount);
+      }
+      else {
+        assertEquals(0, samplesAtBound);
+      }
+    }
+
+    assertTrue(samplesAtBound > 0);
+    // Thread count still oscillates below the bound while the flag holds
+    assertTrue(threadCountsAtBound.contains(8) && threadCountsAtBound.stream().anyMatch(count -> count < 8));
+  }
+
+  @Test
+  public void testReconfigureKeepsWavePhase() {
+    HillClimbing reconfigured = new HillClimbing(TestOptions.builder(2, 100).build(), new Random(239));
+    HillClimbing untouched = new HillClimbing(TestOptions.builder(2, 100).build(), new Random(239));
+    reconfigured.forceChange(2, StateTransition.INITIALIZING);
+    untouched.forceChange(2, StateTransition.INITIALIZING);
+    int threadCount = 2;
+    for (int i = 0; i < 35; i++) {
+      int newThreadCount = untouched.update(threadCount, 1.0, 1000);
+      assertEquals(newThreadCount, reconfigured.update(threadCount, 1.0, 1000));
+      threadCount = newThreadCount;
+    }
+
+    // Bound far above the control setting: decisions must go on exactly as without reconfiguration
+    assertEquals(threadCount, reconfigured.reconfigure(TestOptions.builder(2, 200).build(), threadCount));
+    for (int i = 0; i < 100; i++) {
+      int newThreadCount = untouched.update(threadCount, 1.0, 1000 + i % 7);
+      assertEquals(newThreadCount, reconfigured.update(threadCount, 1.0, 1000 + i % 7));
+      threadCount = newThreadCount;
+    }
+  }
+}
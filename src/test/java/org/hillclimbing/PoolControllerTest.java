@@ -0,0 +1,185 @@
+package org.hillclimbing;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hillclimbing.TestOptions.options;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PoolControllerTest {
+
+  @Test(timeout = 10_000)
+  public void testThreadPoolExecutorIsResizedWithinBounds() throws InterruptedException {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    try (PoolController ignored = ThreadPoolExecutorController.attach(executor, options(3, 6))) {
+      while (executor.getCorePoolSize() < 3) {
+        executor.execute(() -> {
+        });
+        Thread.sleep(1);
+      }
+
+      assertTrue(executor.getCorePoolSize() <= 6);
+      assertEquals(executor.getCorePoolSize(), executor.getMaximumPoolSize());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void testFailingListenerDoesNotStopAdjustments() throws InterruptedException {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+    AtomicInteger failures = new AtomicInteger();
+    Thread.setDefaultUncaughtExceptionHandler((thread, e) -> failures.incrementAndGet());
+    try (PoolController controller = ThreadPoolExecutorController.attach(executor, options(1, 1))) {
+      controller.setAdjustmentListener((newThreadCount, throughput, transition) -> {
+        throw new IllegalStateException();
+      });
+      // Growth is decided only after the listener is set
+      controller.reconfigure(options(3, 6));
+      while (executor.getCorePoolSize() < 3) {
+        executor.execute(() -> {
+        });
+        Thread.sleep(1);
+      }
+
+      assertTrue(failures.get() > 0);
+    }
+    finally {
+      Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+      executor.shutdown();
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void testReconfigureBoundsTargetImmediately() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    try (PoolController controller = ThreadPoolExecutorController.attach(executor, options(4, 8))) {
+      HillClimbingOptions newOptions = options(1, 2);
+      controller.reconfigure(newOptions);
+      assertSame(newOptions, controller.getOptions());
+      assertTrue(controller.getTargetThreadCount() <= 2);
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void testZeroThreadsCountKeepsOneThread() throws InterruptedException {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try (PoolController ignored = ThreadPoolExecutorController.attach(executor, options(0, 0));
+         ForkJoinPoolController controller = ForkJoinPoolController.attach(pool, options(0, 0))) {
+      while (executor.getCorePoolSize() > 1) {
+        Thread.sleep(1);
+      }
+      // Let a few samples shrink the limit as far as they can
+      Thread.sleep(50);
+
+      CountDownLatch latch = new CountDownLatch(2);
+      executor.execute(latch::countDown);
+      controller.execute(latch::countDown);
+      latch.await();
+      assertEquals(1, executor.getMaximumPoolSize());
+    }
+    finally {
+      executor.shutdown();
+      pool.shutdown();
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void testForkJoinPoolConcurrencyIsLimited() throws InterruptedException {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch latch = new CountDownLatch(100);
+    try (ForkJoinPoolController controller = ForkJoinPoolController.attach(pool, options(2, 2))) {
+      for (int i = 0; i < 100; i++) {
+        controller.execute(() -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          running.decrementAndGet();
+          latch.countDown();
+        });
+      }
+
+      latch.await();
+      assertTrue(maxRunning.get() <= 2);
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void testForkJoinPoolIsCompensatedAboveParallelism() throws InterruptedException {
+    ForkJoinPool pool = new ForkJoinPool(1);
+    // Every task waits for all others, so it completes only if three threads are running simultaneously
+    CountDownLatch latch = new CountDownLatch(3);
+    try (ForkJoinPoolController controller = ForkJoinPoolController.attach(pool, options(3, 3))) {
+      for (int i = 0; i < 3; i++) {
+        controller.execute(() -> {
+          latch.countDown();
+          try {
+            latch.await();
+          }
+          catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+      }
+
+      latch.await();
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test(timeout = 10_000)
+  public void testForkJoinPoolRejectsAfterShutdown() throws InterruptedException {
+    ForkJoinPool pool = new ForkJoinPool(1);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    try (ForkJoinPoolController controller = ForkJoinPoolController.attach(pool, options(1, 1))) {
+      controller.execute(() -> {
+        started.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      started.await();
+      FutureTask<?> queued = new FutureTask<>(() -> null);
+      controller.execute(queued);
+
+      // Queued task is dispatched after the pool is shut down, so it is either run or cancelled, never lost
+      pool.shutdown();
+      release.countDown();
+      assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+      assertTrue(queued.isDone());
+      try {
+        controller.execute(() -> {
+        });
+        fail();
+      }
+      catch (RejectedExecutionException ignored) {
+      }
+    }
+  }
+}
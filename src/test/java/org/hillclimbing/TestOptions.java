@@ -0,0 +1,22 @@
+package org.hillclimbing;
+
+final class TestOptions {
+
+  private TestOptions() {
+  }
+
+  /**
+   * @return builder of options with sample intervals short enough for tests to see adjustments in milliseconds
+   */
+  static HillClimbingOptions.Builder builder(int minThreadsCount, int maxThreadsCount) {
+    return HillClimbingOptions.builder()
+      .setMinThreadsCount(minThreadsCount)
+      .setMaxThreadsCount(maxThreadsCount)
+      .setSampleIntervalLow(5)
+      .setSampleIntervalHigh(10);
+  }
+
+  static HillClimbingOptions options(int minThreadsCount, int maxThreadsCount) {
+    return builder(minThreadsCount, maxThreadsCount).build();
+  }
+}
@@ -0,0 +1,84 @@
+package org.hillclimbing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+  // Small tick, so timeouts of few milliseconds are cascaded through several levels
+  private final TimerWheel wheel = new TimerWheel("test-timer", TimeUnit.MICROSECONDS.toNanos(10));
+
+  @Test(timeout = 10_000)
+  public void testTimeoutsNeverFireEarly() throws InterruptedException {
+    Random random = new Random(239);
+    CountDownLatch latch = new CountDownLatch(500);
+    AtomicInteger early = new AtomicInteger();
+    for (int i = 0; i < 500; i++) {
+      long delayNanos = TimeUnit.MILLISECONDS.toNanos(random.nextInt(100));
+      long deadline = System.nanoTime() + delayNanos;
+      wheel.schedule(() -> {
+        if (System.nanoTime() < deadline) {
+          early.incrementAndGet();
+        }
+        latch.countDown();
+      }, delayNanos);
+    }
+
+    latch.await();
+    assertEquals(0, early.get());
+  }
+
+  @Test(timeout = 10_000)
+  public void testCancelledTimeoutsDontFire() throws InterruptedException {
+    AtomicInteger fired = new AtomicInteger();
+    List<TimerWheel.Timeout> timeouts = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      timeouts.add(wheel.schedule(fired::incrementAndGet, TimeUnit.MILLISECONDS.toNanos(20)));
+    }
+    for (int i = 0; i < 100; i += 2) {
+      assertTrue(timeouts.get(i).cancel());
+    }
+
+    CountDownLatch latch = new CountDownLatch(1);
+    wheel.schedule(latch::countDown, TimeUnit.MILLISECONDS.toNanos(50));
+    latch.await();
+
+    assertEquals(50, fired.get());
+    assertFalse(timeouts.get(1).cancel());
+  }
+
+  @Test(timeout = 10_000)
+  public void testWakesUpWhenIdle() throws InterruptedException {
+    CountDownLatch first = new CountDownLatch(1);
+    wheel.schedule(first::countDown, 0);
+    first.await();
+    Thread.sleep(20);
+
+    CountDownLatch second = new CountDownLatch(1);
+    wheel.schedule(second::countDown, TimeUnit.MILLISECONDS.toNanos(1));
+    second.await();
+  }
+
+  @Test(timeout = 10_000)
+  public void testEarlierTimeoutWakesUpSleepingWheel() throws InterruptedException {
+    // Wheel sleeps until the distant timeout, the nearer one must not wait for it
+    TimerWheel.Timeout distant = wheel.schedule(() -> {
+    }, TimeUnit.HOURS.toNanos(1));
+    Thread.sleep(20);
+
+    CountDownLatch latch = new CountDownLatch(1);
+    wheel.schedule(latch::countDown, TimeUnit.MILLISECONDS.toNanos(1));
+    assertTrue(latch.await(1, TimeUnit.SECONDS));
+    assertTrue(distant.cancel());
+  }
+}